@@ -0,0 +1,148 @@
+/**
+ * AsyncTagger performs POS tagging with a trained model
+ * asynchronously, returning futures that complete once the
+ * tagging is done. Tasks run on virtual threads where the
+ * runtime supports them, and a limiter bounds the number of
+ * running and waiting tasks.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+import java.util.*;
+import java.util.concurrent.*;
+
+public class AsyncTagger implements AutoCloseable {
+    private ModelHolder holder;
+    private ExecutorService executor;
+    private Semaphore admissionLimiter, concurrencyLimiter;
+
+    public AsyncTagger(Model model) {
+        this(model, Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    public AsyncTagger(Model model, int maxConcurrency, int maxQueueDepth) {
+        this(new ModelHolder(model), maxConcurrency, maxQueueDepth);
+    }
+
+    public AsyncTagger(ModelHolder holder, int maxConcurrency, int maxQueueDepth) {
+        super();
+        if (holder == null) {
+            throw new IllegalArgumentException("Model holder to tag with must not be null.");
+        }
+        if (maxConcurrency <= 0 || maxQueueDepth < 0) {
+            throw new IllegalArgumentException("Concurrency must be positive and queue depth must not be negative.");
+        }
+        this.holder = holder;
+        this.executor = createExecutor(maxConcurrency);
+        this.admissionLimiter = new Semaphore(maxConcurrency + maxQueueDepth);
+        this.concurrencyLimiter = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * This method tags a single untagged sentence asynchronously.
+     * The future fails with a RejectedExecutionException if the
+     * limiter is already holding the maximum number of tasks.
+     * If the model is tuned to Witten-Bell smoothing, unknown words
+     * may be tagged differently than when the sentence is tagged
+     * inside a batch, as the smoothing depends on the whole batch.
+     *
+     * @param sentence
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<List<String>> tagAsync(String[] sentence) {
+        return submit(() -> holder.tag(sentence));
+    }
+
+    /**
+     * This method tags an untagged corpus asynchronously as a
+     * single task, so that the smoothing scheme is applied over
+     * the whole corpus exactly as in the blocking tag method.
+     *
+     * @param corpus
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<List<List<String>>> tagAsync(List<String[]> corpus) {
+        return submit(() -> holder.tag(corpus));
+    }
+
+    /**
+     * This method stops accepting new tasks, waits for the
+     * running and waiting tasks to complete, and releases the
+     * underlying executor.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*** Accessors ***/
+
+    public int getAvailableSlots() {
+        return this.admissionLimiter.availablePermits();
+    }
+
+    /**
+     * This method admits a task through the limiter and runs
+     * it on the executor once a concurrency slot is free.
+     *
+     * @param task
+     *
+     * @return CompletableFuture
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        if (!admissionLimiter.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException("Tagging queue is full."));
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    concurrencyLimiter.acquire();
+                    try {
+                        future.complete(task.call());
+                    } finally {
+                        concurrencyLimiter.release();
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    admissionLimiter.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissionLimiter.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * This method creates a virtual-thread-per-task executor if
+     * the runtime provides one (Java 21 and above), and falls back
+     * to a fixed pool of daemon platform threads otherwise.
+     *
+     * @param maxConcurrency
+     *
+     * @return ExecutorService
+     */
+    private static ExecutorService createExecutor(int maxConcurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+                Thread thread = new Thread(runnable, "async-tagger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
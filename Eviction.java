@@ -0,0 +1,9 @@
+/**
+ * Eviction labels the policies that the tag cache can
+ * apply when it is full.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+public enum Eviction {LRU, FIFO}
@@ -51,6 +51,20 @@ public class FileHandler {
         return importedModel;
     }
 
+    public InputStream getFileAsStream() {
+        InputStream fileInput = null;
+        if (Files.exists(filePath)) {
+            try {
+                fileInput = new BufferedInputStream(Files.newInputStream(filePath));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            System.err.println("File to be read does not exist.");
+        }
+        return fileInput;
+    }
+
     public String getFileAsString() {
         if (existingFileData != null) {
             return new String(existingFileData);
@@ -9,20 +9,25 @@
  */
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Enumerated types for labelling smoothing techniques
+ * Enumerated types for labelling word and tag entities
  */
-enum Technique {LAPLACE, WITTENBELL, KNESERNEY}
 enum Type {WORD, TAG, BOTH}
 
 public class Model implements Serializable {
+    private static final long serialVersionUID = -2591605044612773651L;
+    private static final int STREAM_BATCH_SIZE = 256, STREAM_QUEUE_SIZE = 16;
     private Technique smoothingMode = Technique.LAPLACE;
     private HashMap<String, Integer> wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq;
     private HashMap<String, Float> transitionProbMatrix, emissionProbMatrix;
     private List<String> uniqueWords, uniqueTags;
-    private List<List<String>> results;
     private String startTag, separator;
+    private transient TagCache cache;
+    private transient volatile float[][] transitionScores;
+    private transient volatile double[][] smoothedTransitionScores;
 
     public Model() {
         super();
@@ -38,7 +43,34 @@ public class Model implements Serializable {
      * @param trainingCorpus
      */
     public void train(List<String[]> trainingCorpus) {
+        if (cache != null) {
+            cache.clear();
+        }
         indexCorpus(trainingCorpus);
+        transitionScores = null;
+        smoothedTransitionScores = null;
+        buildTransitionMatrix();
+        buildEmissionMatrix();
+    }
+
+    /**
+     * This method trains the model like the corpus version, but
+     * reads the tagged sentences from a stream, one sentence per line.
+     * A reader thread parses the stream while the frequency tables
+     * are updated, so the corpus is never held in memory. If the
+     * stream cannot be read, the model is left unchanged.
+     *
+     * @param trainingStream
+     *
+     * @throws IOException
+     */
+    public void train(InputStream trainingStream) throws IOException {
+        indexStream(trainingStream);
+        if (cache != null) {
+            cache.clear();
+        }
+        transitionScores = null;
+        smoothedTransitionScores = null;
         buildTransitionMatrix();
         buildEmissionMatrix();
     }
@@ -57,103 +89,13 @@ public class Model implements Serializable {
      * @return float
      */
     public float test(List<String[]> testCorpus, Technique smoothingScheme, boolean isTagged) {
-        Set<String> testWords, seenWords, unseenWords;
-        HashMap<String, Integer> testWordsFreq;
         int correct = 0, total = 0;
-        SmoothScheme smoother = null;
         List<String[]> untaggedTestCorpus = isTagged ? getStrippedCorpus(testCorpus) : testCorpus;
-        switch (smoothingScheme) {
-            case LAPLACE:
-                smoother = new Laplace(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, 1);
-                break;
-            case WITTENBELL:
-                testWordsFreq = new HashMap<String, Integer>();
-                for (String[] sentence : untaggedTestCorpus) {
-                    for (String word : sentence) {
-                        incrementFreqTable(testWordsFreq, word);
-                    }
-                }
-                seenWords = wordFreq.keySet();
-                unseenWords = new HashSet<String>(testWordsFreq.keySet());
-                unseenWords.removeAll(seenWords);
-                smoother = new WittenBell(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, seenWords.size(), unseenWords.size());
-                break;
-            default:
-                smoother = new Laplace(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, 1);
-                break;
-        }
-        results = new ArrayList<List<String>>();
-        for (int sentenceIndex = 0; sentenceIndex < untaggedTestCorpus.size(); sentenceIndex++) {
-            String[] sentence = untaggedTestCorpus.get(sentenceIndex);
-            String[] taggedSentence = testCorpus.get(sentenceIndex);
-            double[][] pathProbMatrix = new double[uniqueTags.size() + 1][sentence.length];
-            int[][] backpointerMatrix = new int[uniqueTags.size() + 1][sentence.length];
-            double maxPathValue = -1;
-            int bestPrevTagIndex = -1;
-            for (int wordIndex = 0; wordIndex < sentence.length; wordIndex++) {
-                String currentWord = sentence[wordIndex];
-                for (int tagIndex = 0; tagIndex < uniqueTags.size(); tagIndex++) {
-                    Float alpha, beta;
-                    String currentTag = uniqueTags.get(tagIndex);
-                    if (currentTag == startTag) {
-                        continue;
-                    } else if (wordIndex == 0) {
-                        alpha = transitionProbMatrix.get(startTag + separator + currentTag);
-                        alpha = (alpha != null) ? alpha : 0.0f;
-                        beta = emissionProbMatrix.get(currentWord + separator + currentTag);
-                        beta = (beta != null) ? beta : (countWord(currentWord) == 0)
-                            ? smoother.getBigramEmission(currentWord, currentTag)
-                            : 0.0f;
-                        pathProbMatrix[tagIndex][wordIndex] = alpha * beta;
-                        backpointerMatrix[tagIndex][wordIndex] = -1;
-                    } else {
-                        bestPrevTagIndex = 0;
-                        maxPathValue = 0.0f;
-                        for (int prevTagIndex = 0; prevTagIndex < uniqueTags.size(); prevTagIndex++) {
-                            String prevTag = uniqueTags.get(prevTagIndex);
-                            alpha = transitionProbMatrix.get(prevTag + separator + currentTag);
-                            alpha = (alpha != null) ? alpha : 0.0f;
-                            double value = pathProbMatrix[prevTagIndex][wordIndex - 1] * alpha;
-                            if (value >= maxPathValue) {
-                                maxPathValue = value;
-                                bestPrevTagIndex = prevTagIndex;
-                            }
-                        }
-                        beta = emissionProbMatrix.get(currentWord + separator + currentTag);
-                        beta = (beta != null) ? beta : (countWord(currentWord) == 0)
-                                ? smoother.getBigramEmission(currentWord, currentTag)
-                                : 0.0f;
-                        pathProbMatrix[tagIndex][wordIndex] = maxPathValue * beta;
-                        backpointerMatrix[tagIndex][wordIndex] = bestPrevTagIndex;
-                    }
-                }
-            }
-            int bestEndIndex = 0;
-            maxPathValue = 0.0f;
-            for (int tagIndex = 0; tagIndex < uniqueTags.size(); tagIndex++) {
-                String tag = uniqueTags.get(tagIndex);
-                if (tag == startTag) {
-                    continue;
-                }
-                double pathValue = pathProbMatrix[tagIndex][sentence.length - 1];
-                if (pathValue >= maxPathValue) {
-                    maxPathValue = pathValue;
-                    bestEndIndex = tagIndex;
-                }
-            }
-            pathProbMatrix[uniqueTags.size()][sentence.length - 1] = maxPathValue;
-            backpointerMatrix[uniqueTags.size()][sentence.length - 1] = bestEndIndex;
-            int prevStateIndex = bestEndIndex;
-            int prevSequenceIndex = sentence.length - 1;
-            List<String> prediction = new ArrayList<String>();
-            while (prevStateIndex != -1 && prevSequenceIndex >= 0) {
-                String tag = uniqueTags.get(prevStateIndex);
-                String word = sentence[prevSequenceIndex];
-                prediction.add(0, word + separator + tag);
-                prevStateIndex = backpointerMatrix[prevStateIndex][prevSequenceIndex];
-                prevSequenceIndex -= 1;
-            }
-            if (isTagged) {
+        List<List<String>> results = decode(untaggedTestCorpus, smoothingScheme);
+        if (isTagged) {
+            for (int sentenceIndex = 0; sentenceIndex < results.size(); sentenceIndex++) {
+                List<String> prediction = results.get(sentenceIndex);
+                String[] taggedSentence = testCorpus.get(sentenceIndex);
                 for (int predictionIndex = 0; predictionIndex < prediction.size(); predictionIndex++) {
                     if (prediction.get(predictionIndex).equals(taggedSentence[predictionIndex])) {
                         correct += 1;
@@ -161,7 +103,6 @@ public class Model implements Serializable {
                     total += 1;
                 }
             }
-            results.add(prediction);
         }
         return isTagged ? ((float)correct / total) : 0.0f;
     }
@@ -235,12 +176,124 @@ public class Model implements Serializable {
      * @return List
      */
     public List<List<String>> tag(List<String[]> corpus) {
-        test(corpus, smoothingMode, false);
-        return results;
+        return decode(corpus, smoothingMode);
+    }
+
+    /**
+     * This method applies actual tagging on a single untagged
+     * sentence, using the trained and tuned parameters of the model.
+     * The tagged sentence will be returned, or an empty list if the
+     * sentence is empty. With Witten-Bell smoothing, unknown words
+     * may be tagged differently than inside a whole corpus, as the
+     * smoothing depends on the unknown words of the other sentences.
+     *
+     * @param sentence
+     *
+     * @return List
+     */
+    public List<String> tag(String[] sentence) {
+        if (sentence.length == 0) {
+            return new ArrayList<String>();
+        }
+        List<String[]> corpus = new ArrayList<String[]>();
+        corpus.add(sentence);
+        return decode(corpus, smoothingMode).get(0);
+    }
+
+    /**
+     * This method tags a single untagged sentence with the Viterbi
+     * algorithm in log space, and attaches the marginal probability
+     * of every chosen tag from the forward-backward algorithm as its
+     * confidence. Both passes share the same trellis, whose unseen
+     * tag transitions are smoothed so that every sentence has a path.
+     * A path through unseen transitions is only chosen when every
+     * path needs as many. An empty sentence gives an empty tagging.
+     *
+     * @param sentence
+     *
+     * @return Tagging
+     */
+    public Tagging tagWithConfidence(String[] sentence) {
+        Trellis trellis = buildTrellis(sentence);
+        return toTagging(trellis, trellis.getBestPath(), forwardBackward(trellis));
+    }
+
+    /**
+     * This method computes the marginal probability of every
+     * tag for each word of an untagged sentence with the scaled
+     * forward-backward algorithm. Tags with zero probability
+     * are left out, and an empty sentence gives an empty list.
+     *
+     * @param sentence
+     *
+     * @return List
+     */
+    public List<Map<String, Double>> getTagMarginals(String[] sentence) {
+        double[][] marginals = forwardBackward(buildTrellis(sentence));
+        List<Map<String, Double>> tagMarginals = new ArrayList<Map<String, Double>>();
+        for (double[] wordMarginals : marginals) {
+            Map<String, Double> tagProbabilities = new HashMap<String, Double>();
+            for (int tagIndex = 0; tagIndex < wordMarginals.length; tagIndex++) {
+                if (wordMarginals[tagIndex] > 0) {
+                    tagProbabilities.put(uniqueTags.get(tagIndex), wordMarginals[tagIndex]);
+                }
+            }
+            tagMarginals.add(tagProbabilities);
+        }
+        return tagMarginals;
+    }
+
+    /**
+     * This method returns a lazy iterator over the tag sequences
+     * of an untagged sentence, from the most probable downwards.
+     * Each further sequence is only searched for when requested.
+     * Sequences through fewer tag transitions unseen in training
+     * come first, so the first sequence is the one returned by
+     * tagWithConfidence. There is none for an empty sentence.
+     *
+     * @param sentence
+     *
+     * @return Iterator
+     */
+    public Iterator<Tagging> tagKBest(String[] sentence) {
+        return new KBestIterator(buildTrellis(sentence));
+    }
+
+    /**
+     * This method returns up to k most probable tag sequences
+     * of an untagged sentence, from the most probable downwards.
+     *
+     * @param sentence
+     * @param k
+     *
+     * @return List
+     */
+    public List<Tagging> tagKBest(String[] sentence, int k) {
+        List<Tagging> taggings = new ArrayList<Tagging>();
+        Iterator<Tagging> iterator = tagKBest(sentence);
+        while (taggings.size() < k && iterator.hasNext()) {
+            taggings.add(iterator.next());
+        }
+        return taggings;
+    }
+
+    /**
+     * This method attaches a cache of decoded tag sequences to
+     * the model, so that repeated sentences skip the Viterbi
+     * algorithm. A null cache disables caching.
+     *
+     * @param cache
+     */
+    public void setCache(TagCache cache) {
+        this.cache = cache;
     }
 
     /*** Accessors ***/
 
+    public TagCache getCache() {
+        return this.cache;
+    }
+
     public Technique getBestTechnique() {
         return this.smoothingMode;
     }
@@ -365,6 +418,593 @@ public class Model implements Serializable {
         }
     }
 
+    /**
+     * This method tags every sentence of an untagged corpus
+     * with the Viterbi algorithm, using the given smoothing
+     * scheme on unknown words. It only reads the model state,
+     * so concurrent calls on a trained model are safe.
+     *
+     * @param untaggedCorpus
+     * @param smoothingScheme
+     *
+     * @return List
+     */
+    private List<List<String>> decode(List<String[]> untaggedCorpus, Technique smoothingScheme) {
+        SmoothScheme smoother = getSmoother(untaggedCorpus, smoothingScheme);
+        List<List<String>> results = new ArrayList<List<String>>();
+        TagCache sharedCache = cache;
+        for (String[] sentence : untaggedCorpus) {
+            if (sharedCache == null || !isCacheable(sentence, smoothingScheme)) {
+                results.add(decodeSentence(sentence, smoother));
+                continue;
+            }
+            String[] tags = sharedCache.get(sentence, smoothingScheme);
+            if (tags != null) {
+                List<String> prediction = new ArrayList<String>();
+                for (int index = 0; index < sentence.length; index++) {
+                    prediction.add(sentence[index] + separator + tags[index]);
+                }
+                results.add(prediction);
+            } else {
+                List<String> prediction = decodeSentence(sentence, smoother);
+                tags = new String[prediction.size()];
+                for (int index = 0; index < tags.length; index++) {
+                    tags[index] = splitElement(prediction.get(index))[1];
+                }
+                sharedCache.put(sentence, smoothingScheme, tags);
+                results.add(prediction);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * This method checks if the tag sequence of a sentence
+     * depends on the sentence alone. Witten-Bell smoothing of
+     * unknown words depends on the rest of the corpus, so those
+     * sentences are only cacheable when every word is known.
+     *
+     * @param sentence
+     * @param smoothingScheme
+     *
+     * @return boolean
+     */
+    private boolean isCacheable(String[] sentence, Technique smoothingScheme) {
+        if (smoothingScheme != Technique.WITTENBELL) {
+            return true;
+        }
+        for (String word : sentence) {
+            if (countWord(word) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method constructs the smoothing scheme to be
+     * applied on the unknown words of an untagged corpus.
+     *
+     * @param untaggedCorpus
+     * @param smoothingScheme
+     *
+     * @return SmoothScheme
+     */
+    private SmoothScheme getSmoother(List<String[]> untaggedCorpus, Technique smoothingScheme) {
+        Set<String> seenWords, unseenWords;
+        HashMap<String, Integer> testWordsFreq;
+        switch (smoothingScheme) {
+            case LAPLACE:
+                return new Laplace(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, 1);
+            case WITTENBELL:
+                testWordsFreq = new HashMap<String, Integer>();
+                for (String[] sentence : untaggedCorpus) {
+                    for (String word : sentence) {
+                        incrementFreqTable(testWordsFreq, word);
+                    }
+                }
+                seenWords = wordFreq.keySet();
+                unseenWords = new HashSet<String>(testWordsFreq.keySet());
+                unseenWords.removeAll(seenWords);
+                return new WittenBell(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, seenWords.size(), unseenWords.size());
+            default:
+                return new Laplace(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, 1);
+        }
+    }
+
+    /**
+     * This method applies the Viterbi algorithm on a single
+     * untagged sentence and returns its best word-tag sequence.
+     *
+     * @param sentence
+     * @param smoother
+     *
+     * @return List
+     */
+    private List<String> decodeSentence(String[] sentence, SmoothScheme smoother) {
+        int[] path = viterbi(new Trellis(sentence, smoother));
+        List<String> prediction = new ArrayList<String>();
+        for (int wordIndex = 0; wordIndex < path.length; wordIndex++) {
+            prediction.add(sentence[wordIndex] + separator + uniqueTags.get(path[wordIndex]));
+        }
+        return prediction;
+    }
+
+    /**
+     * This method applies the Viterbi algorithm on the trellis
+     * of a sentence and returns the tag indices of the best path.
+     *
+     * @param trellis
+     *
+     * @return int[]
+     */
+    private int[] viterbi(Trellis trellis) {
+        int tagCount = uniqueTags.size(), length = trellis.sentence.length;
+        if (length == 0) {
+            return new int[0];
+        }
+        double[][] pathProbMatrix = new double[tagCount + 1][length];
+        int[][] backpointerMatrix = new int[tagCount + 1][length];
+        double maxPathValue = -1;
+        int bestPrevTagIndex = -1;
+        for (int wordIndex = 0; wordIndex < length; wordIndex++) {
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                float beta = trellis.emission[wordIndex][tagIndex];
+                if (uniqueTags.get(tagIndex) == startTag) {
+                    continue;
+                } else if (wordIndex == 0) {
+                    pathProbMatrix[tagIndex][wordIndex] = trellis.transition[tagCount][tagIndex] * beta;
+                    backpointerMatrix[tagIndex][wordIndex] = -1;
+                } else {
+                    bestPrevTagIndex = 0;
+                    maxPathValue = 0.0f;
+                    for (int prevTagIndex = 0; prevTagIndex < tagCount; prevTagIndex++) {
+                        double value = pathProbMatrix[prevTagIndex][wordIndex - 1] * trellis.transition[prevTagIndex][tagIndex];
+                        if (value >= maxPathValue) {
+                            maxPathValue = value;
+                            bestPrevTagIndex = prevTagIndex;
+                        }
+                    }
+                    pathProbMatrix[tagIndex][wordIndex] = maxPathValue * beta;
+                    backpointerMatrix[tagIndex][wordIndex] = bestPrevTagIndex;
+                }
+            }
+        }
+        int bestEndIndex = 0;
+        maxPathValue = 0.0f;
+        for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+            if (uniqueTags.get(tagIndex) == startTag) {
+                continue;
+            }
+            double pathValue = pathProbMatrix[tagIndex][length - 1];
+            if (pathValue >= maxPathValue) {
+                maxPathValue = pathValue;
+                bestEndIndex = tagIndex;
+            }
+        }
+        pathProbMatrix[tagCount][length - 1] = maxPathValue;
+        backpointerMatrix[tagCount][length - 1] = bestEndIndex;
+        int[] path = new int[length];
+        int prevStateIndex = bestEndIndex;
+        int prevSequenceIndex = length - 1;
+        while (prevStateIndex != -1 && prevSequenceIndex >= 0) {
+            path[prevSequenceIndex] = prevStateIndex;
+            prevStateIndex = backpointerMatrix[prevStateIndex][prevSequenceIndex];
+            prevSequenceIndex -= 1;
+        }
+        return path;
+    }
+
+    /**
+     * This method applies the forward-backward algorithm on the
+     * trellis of a sentence and returns the marginal probability
+     * of every tag at every word. The forward and backward values
+     * are rescaled at every word so that they do not underflow
+     * on long sentences.
+     *
+     * @param trellis
+     *
+     * @return double[][]
+     */
+    private double[][] forwardBackward(Trellis trellis) {
+        int tagCount = uniqueTags.size(), length = trellis.sentence.length;
+        double[][] transition = trellis.smoothedTransition;
+        double[][] forward = new double[length][tagCount];
+        double[][] backward = new double[length][tagCount];
+        double[] scale = new double[length];
+        for (int wordIndex = 0; wordIndex < length; wordIndex++) {
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                double value = 0;
+                if (wordIndex == 0) {
+                    value = transition[tagCount][tagIndex];
+                } else {
+                    for (int prevTagIndex = 0; prevTagIndex < tagCount; prevTagIndex++) {
+                        value += forward[wordIndex - 1][prevTagIndex] * transition[prevTagIndex][tagIndex];
+                    }
+                }
+                forward[wordIndex][tagIndex] = value * trellis.emission[wordIndex][tagIndex];
+                scale[wordIndex] += forward[wordIndex][tagIndex];
+            }
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                forward[wordIndex][tagIndex] /= scale[wordIndex];
+            }
+        }
+        for (int wordIndex = length - 1; wordIndex >= 0; wordIndex--) {
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                if (wordIndex == length - 1) {
+                    backward[wordIndex][tagIndex] = 1.0;
+                    continue;
+                }
+                double value = 0;
+                for (int nextTagIndex = 0; nextTagIndex < tagCount; nextTagIndex++) {
+                    value += transition[tagIndex][nextTagIndex]
+                            * trellis.emission[wordIndex + 1][nextTagIndex]
+                            * backward[wordIndex + 1][nextTagIndex];
+                }
+                backward[wordIndex][tagIndex] = value / scale[wordIndex + 1];
+            }
+        }
+        double[][] marginals = new double[length][tagCount];
+        for (int wordIndex = 0; wordIndex < length; wordIndex++) {
+            double total = 0;
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                marginals[wordIndex][tagIndex] = forward[wordIndex][tagIndex] * backward[wordIndex][tagIndex];
+                total += marginals[wordIndex][tagIndex];
+            }
+            for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                marginals[wordIndex][tagIndex] /= total;
+            }
+        }
+        return marginals;
+    }
+
+    /**
+     * This method builds the trellis of a single untagged
+     * sentence, using the tuned smoothing scheme on unknown words.
+     *
+     * @param sentence
+     *
+     * @return Trellis
+     */
+    private Trellis buildTrellis(String[] sentence) {
+        List<String[]> corpus = new ArrayList<String[]>();
+        corpus.add(sentence);
+        return new Trellis(sentence, getSmoother(corpus, smoothingMode));
+    }
+
+    /**
+     * This method converts a path of tag indices through the
+     * trellis into a tagging, with the log probability of the
+     * path and the marginal probability of each tag on it.
+     *
+     * @param trellis
+     * @param path
+     * @param marginals
+     *
+     * @return Tagging
+     */
+    private Tagging toTagging(Trellis trellis, int[] path, double[][] marginals) {
+        int tagCount = uniqueTags.size();
+        List<String> taggedWords = new ArrayList<String>();
+        double[] confidence = new double[path.length];
+        double logProbability = 0;
+        for (int wordIndex = 0; wordIndex < path.length; wordIndex++) {
+            int prevTagIndex = (wordIndex == 0) ? tagCount : path[wordIndex - 1];
+            logProbability += trellis.logTransition[prevTagIndex][path[wordIndex]]
+                    + Math.log(trellis.emission[wordIndex][path[wordIndex]]);
+            taggedWords.add(trellis.sentence[wordIndex] + separator + uniqueTags.get(path[wordIndex]));
+            confidence[wordIndex] = marginals[wordIndex][path[wordIndex]];
+        }
+        return new Tagging(taggedWords, confidence, logProbability);
+    }
+
+    /**
+     * This method returns the transition probabilities between
+     * every pair of tags as a matrix indexed by tag, with the
+     * transitions from the start tag in the last row. The matrix
+     * is built once per trained model and shared by all trellises.
+     *
+     * @return float[][]
+     */
+    private float[][] getTransitionScores() {
+        float[][] scores = transitionScores;
+        if (scores == null) {
+            int tagCount = uniqueTags.size();
+            scores = new float[tagCount + 1][tagCount];
+            for (int currIndex = 0; currIndex < tagCount; currIndex++) {
+                String currTag = uniqueTags.get(currIndex);
+                for (int prevIndex = 0; prevIndex < tagCount; prevIndex++) {
+                    Float alpha = transitionProbMatrix.get(uniqueTags.get(prevIndex) + separator + currTag);
+                    scores[prevIndex][currIndex] = (alpha != null) ? alpha : 0.0f;
+                }
+                Float alpha = transitionProbMatrix.get(startTag + separator + currTag);
+                scores[tagCount][currIndex] = (alpha != null) ? alpha : 0.0f;
+            }
+            transitionScores = scores;
+        }
+        return scores;
+    }
+
+    /**
+     * This method returns the transition probabilities used by
+     * the forward-backward and k-best passes. They are the
+     * transition probabilities of the model, except that tag
+     * transitions unseen in training fall back to Laplace
+     * smoothing, so that no sentence is left without any path.
+     * Transitions into the start tag remain impossible.
+     *
+     * @return double[][]
+     */
+    private double[][] getSmoothedTransitionScores() {
+        double[][] scores = smoothedTransitionScores;
+        if (scores == null) {
+            float[][] rawScores = getTransitionScores();
+            SmoothScheme smoother = new Laplace(wordFreq, tagFreq, wordTagFreq, prevCurrTagFreq, 1);
+            int tagCount = uniqueTags.size();
+            scores = new double[tagCount + 1][tagCount];
+            for (int currIndex = 0; currIndex < tagCount; currIndex++) {
+                String currTag = uniqueTags.get(currIndex);
+                if (currTag.equals(startTag)) {
+                    continue;
+                }
+                for (int prevIndex = 0; prevIndex <= tagCount; prevIndex++) {
+                    String prevTag = (prevIndex < tagCount) ? uniqueTags.get(prevIndex) : startTag;
+                    scores[prevIndex][currIndex] = (rawScores[prevIndex][currIndex] > 0)
+                            ? rawScores[prevIndex][currIndex]
+                            : smoother.getBigramTransition(prevTag, currTag);
+                }
+            }
+            smoothedTransitionScores = scores;
+        }
+        return scores;
+    }
+
+    /**
+     * The Trellis class holds the transition and emission
+     * probabilities needed to decode a single sentence, so that
+     * the Viterbi, forward-backward and k-best passes look up
+     * each probability only once. The log-space scores of the
+     * best prefixes are computed on demand and shared by the
+     * confidence and k-best passes.
+     */
+    private class Trellis {
+        private String[] sentence;
+        private float[][] transition, emission;
+        private double[][] smoothedTransition, logTransition, bestPrefix;
+        private int[][] unseenPrefix, backpointer;
+
+        public Trellis(String[] sentence, SmoothScheme smoother) {
+            super();
+            this.sentence = sentence;
+            this.transition = getTransitionScores();
+            this.smoothedTransition = getSmoothedTransitionScores();
+            this.emission = new float[sentence.length][uniqueTags.size()];
+            for (int wordIndex = 0; wordIndex < sentence.length; wordIndex++) {
+                String currentWord = sentence[wordIndex];
+                boolean isUnknown = countWord(currentWord) == 0;
+                for (int tagIndex = 0; tagIndex < uniqueTags.size(); tagIndex++) {
+                    String currentTag = uniqueTags.get(tagIndex);
+                    if (currentTag == startTag) {
+                        continue;
+                    }
+                    Float beta = emissionProbMatrix.get(currentWord + separator + currentTag);
+                    emission[wordIndex][tagIndex] = (beta != null) ? beta : isUnknown
+                            ? smoother.getBigramEmission(currentWord, currentTag)
+                            : 0.0f;
+                }
+            }
+        }
+
+        /**
+         * This method finds the best tag sequence ending in every
+         * tag at every word, and keeps its number of transitions
+         * unseen in training, its log probability with the smoothed
+         * transitions, and its backpointer. Sequences with fewer
+         * unseen transitions are better, and ties are broken by
+         * log probability.
+         */
+        public void scoreBestPrefixes() {
+            if (bestPrefix != null) {
+                return;
+            }
+            int tagCount = uniqueTags.size();
+            logTransition = new double[tagCount + 1][tagCount];
+            bestPrefix = new double[sentence.length][tagCount];
+            unseenPrefix = new int[sentence.length][tagCount];
+            backpointer = new int[sentence.length][tagCount];
+            for (int prevTagIndex = 0; prevTagIndex <= tagCount; prevTagIndex++) {
+                for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                    logTransition[prevTagIndex][tagIndex] = Math.log(smoothedTransition[prevTagIndex][tagIndex]);
+                }
+            }
+            for (int wordIndex = 0; wordIndex < sentence.length; wordIndex++) {
+                for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                    double best = Double.NEGATIVE_INFINITY;
+                    int bestUnseen = Integer.MAX_VALUE, bestPrevTagIndex = -1;
+                    if (wordIndex == 0) {
+                        best = logTransition[tagCount][tagIndex];
+                        bestUnseen = countUnseen(tagCount, tagIndex);
+                    } else {
+                        for (int prevTagIndex = 0; prevTagIndex < tagCount; prevTagIndex++) {
+                            double value = bestPrefix[wordIndex - 1][prevTagIndex] + logTransition[prevTagIndex][tagIndex];
+                            int unseen = unseenPrefix[wordIndex - 1][prevTagIndex] + countUnseen(prevTagIndex, tagIndex);
+                            if (value > Double.NEGATIVE_INFINITY && isBetter(unseen, value, bestUnseen, best)) {
+                                best = value;
+                                bestUnseen = unseen;
+                                bestPrevTagIndex = prevTagIndex;
+                            }
+                        }
+                    }
+                    bestPrefix[wordIndex][tagIndex] = best + Math.log(emission[wordIndex][tagIndex]);
+                    unseenPrefix[wordIndex][tagIndex] = (bestPrefix[wordIndex][tagIndex] > Double.NEGATIVE_INFINITY)
+                            ? bestUnseen
+                            : Integer.MAX_VALUE;
+                    backpointer[wordIndex][tagIndex] = bestPrevTagIndex;
+                }
+            }
+        }
+
+        /**
+         * This method returns the tag indices of the best path
+         * through the trellis, found in log space so that it does
+         * not underflow on long sentences.
+         *
+         * @return int[]
+         */
+        public int[] getBestPath() {
+            scoreBestPrefixes();
+            int[] path = new int[sentence.length];
+            if (sentence.length == 0) {
+                return path;
+            }
+            int last = sentence.length - 1, bestEndIndex = 0;
+            for (int tagIndex = 1; tagIndex < uniqueTags.size(); tagIndex++) {
+                if (isBetter(unseenPrefix[last][tagIndex], bestPrefix[last][tagIndex],
+                        unseenPrefix[last][bestEndIndex], bestPrefix[last][bestEndIndex])) {
+                    bestEndIndex = tagIndex;
+                }
+            }
+            path[sentence.length - 1] = bestEndIndex;
+            for (int wordIndex = sentence.length - 1; wordIndex > 0; wordIndex--) {
+                path[wordIndex - 1] = backpointer[wordIndex][path[wordIndex]];
+            }
+            return path;
+        }
+
+        /**
+         * This method returns 1 if the transition between two tags
+         * was unseen in training and is only possible by smoothing.
+         *
+         * @param prevTagIndex
+         * @param tagIndex
+         *
+         * @return int
+         */
+        public int countUnseen(int prevTagIndex, int tagIndex) {
+            return (transition[prevTagIndex][tagIndex] > 0) ? 0 : 1;
+        }
+    }
+
+    /**
+     * This method checks if a tag sequence is better than another,
+     * given their numbers of unseen transitions and log probabilities.
+     *
+     * @param unseen
+     * @param score
+     * @param otherUnseen
+     * @param otherScore
+     *
+     * @return boolean
+     */
+    private static boolean isBetter(int unseen, double score, int otherUnseen, double otherScore) {
+        return (unseen != otherUnseen) ? unseen < otherUnseen : score > otherScore;
+    }
+
+    /**
+     * The KBestIterator class searches the tag sequences of a
+     * sentence backwards from the last word, best-first. The Viterbi
+     * score of the best prefix is an exact estimate of the rest of
+     * each partial sequence, so complete sequences are found in the
+     * order of the trellis (fewest unseen transitions, then highest
+     * probability) and only the branches needed for them are expanded.
+     */
+    private class KBestIterator implements Iterator<Tagging> {
+        private Trellis trellis;
+        private double[][] logEmission, marginals;
+        private PriorityQueue<PartialPath> frontier;
+        private Tagging nextTagging;
+
+        public KBestIterator(Trellis trellis) {
+            super();
+            int tagCount = uniqueTags.size(), length = trellis.sentence.length;
+            this.trellis = trellis;
+            this.logEmission = new double[length][tagCount];
+            this.frontier = new PriorityQueue<PartialPath>();
+            trellis.scoreBestPrefixes();
+            for (int wordIndex = 0; wordIndex < length; wordIndex++) {
+                for (int tagIndex = 0; tagIndex < tagCount; tagIndex++) {
+                    logEmission[wordIndex][tagIndex] = Math.log(trellis.emission[wordIndex][tagIndex]);
+                }
+            }
+            for (int tagIndex = 0; tagIndex < tagCount && length > 0; tagIndex++) {
+                if (trellis.bestPrefix[length - 1][tagIndex] > Double.NEGATIVE_INFINITY) {
+                    frontier.add(new PartialPath(length - 1, tagIndex, 0, 0,
+                            trellis.unseenPrefix[length - 1][tagIndex], trellis.bestPrefix[length - 1][tagIndex], null));
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            while (nextTagging == null && !frontier.isEmpty()) {
+                PartialPath partial = frontier.poll();
+                if (partial.wordIndex == 0) {
+                    nextTagging = complete(partial);
+                    break;
+                }
+                int wordIndex = partial.wordIndex;
+                double suffixScore = partial.suffixScore + logEmission[wordIndex][partial.tagIndex];
+                for (int prevTagIndex = 0; prevTagIndex < uniqueTags.size(); prevTagIndex++) {
+                    double score = suffixScore + trellis.logTransition[prevTagIndex][partial.tagIndex];
+                    double prefixScore = trellis.bestPrefix[wordIndex - 1][prevTagIndex];
+                    int unseen = partial.suffixUnseen + trellis.countUnseen(prevTagIndex, partial.tagIndex);
+                    if (score > Double.NEGATIVE_INFINITY && prefixScore > Double.NEGATIVE_INFINITY) {
+                        frontier.add(new PartialPath(wordIndex - 1, prevTagIndex, unseen, score,
+                                trellis.unseenPrefix[wordIndex - 1][prevTagIndex] + unseen, prefixScore + score, partial));
+                    }
+                }
+            }
+            return nextTagging != null;
+        }
+
+        public Tagging next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Tagging tagging = nextTagging;
+            nextTagging = null;
+            return tagging;
+        }
+
+        private Tagging complete(PartialPath partial) {
+            if (marginals == null) {
+                marginals = forwardBackward(trellis);
+            }
+            int[] path = new int[trellis.sentence.length];
+            for (PartialPath node = partial; node != null; node = node.next) {
+                path[node.wordIndex] = node.tagIndex;
+            }
+            return toTagging(trellis, path, marginals);
+        }
+    }
+
+    /**
+     * The PartialPath class is a tag sequence from a word to the
+     * end of the sentence, ordered by the estimated number of unseen
+     * transitions and log probability of its best completion.
+     */
+    private static class PartialPath implements Comparable<PartialPath> {
+        private int wordIndex, tagIndex, suffixUnseen, estimatedUnseen;
+        private double suffixScore, estimate;
+        private PartialPath next;
+
+        public PartialPath(int wordIndex, int tagIndex, int suffixUnseen, double suffixScore, int estimatedUnseen, double estimate, PartialPath next) {
+            super();
+            this.wordIndex = wordIndex;
+            this.tagIndex = tagIndex;
+            this.suffixUnseen = suffixUnseen;
+            this.suffixScore = suffixScore;
+            this.estimatedUnseen = estimatedUnseen;
+            this.estimate = estimate;
+            this.next = next;
+        }
+
+        public int compareTo(PartialPath other) {
+            return (estimatedUnseen != other.estimatedUnseen)
+                    ? Integer.compare(estimatedUnseen, other.estimatedUnseen)
+                    : Double.compare(other.estimate, estimate);
+        }
+    }
+
     /**
      * This method creates the word and tag frequency tables
      * based on the provided corpus.
@@ -372,37 +1012,173 @@ public class Model implements Serializable {
      * @param corpus
      */
     private void indexCorpus(List<String[]> corpus) {
-        String prevWord, currWord, prevTag, currTag, prevCurrTag;
-        String[] currWordTag;
-        String prev = "", curr = "";
-        wordFreq = new HashMap<String, Integer>();
-        tagFreq = new HashMap<String, Integer>();
-        wordTagFreq = new HashMap<String, Integer>();
-        prevCurrTagFreq = new HashMap<String, Integer>();
+        CorpusIndexer indexer = new CorpusIndexer();
         for (String[] sentence : corpus) {
-            for (int index = 0; index < sentence.length; index++) {
-                curr = sentence[index];
-                currWordTag = splitElement(curr);
-                currWord = currWordTag[0];
-                currTag = currWordTag[1];
-                incrementFreqTable(wordFreq, currWord);
-                incrementFreqTable(tagFreq, currTag);
-                incrementFreqTable(wordTagFreq, curr);
-                if (index == 0) {
-                    incrementFreqTable(tagFreq, startTag);
-                    prevTag = startTag;
-                } else {
-                    prev = sentence[index - 1];
-                    prevTag = splitElement(prev)[1];
+            indexer.addSentence(sentence);
+        }
+        indexer.finish();
+    }
+
+    /**
+     * This method creates the word and tag frequency tables
+     * from a stream of tagged sentences. A reader thread splits
+     * the lines into sentences and hands them over in batches
+     * through a bounded queue, while this thread counts them.
+     *
+     * @param trainingStream
+     *
+     * @throws IOException
+     */
+    private void indexStream(InputStream trainingStream) throws IOException {
+        BlockingQueue<List<String[]>> batches = new ArrayBlockingQueue<List<String[]>>(STREAM_QUEUE_SIZE);
+        AtomicReference<Throwable> readError = new AtomicReference<Throwable>();
+        Thread reader = new Thread(() -> {
+            try {
+                BufferedReader lineReader = new BufferedReader(new InputStreamReader(trainingStream));
+                List<String[]> batch = new ArrayList<String[]>(STREAM_BATCH_SIZE);
+                String line;
+                while ((line = lineReader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    batch.add(line.split(" +"));
+                    if (batch.size() == STREAM_BATCH_SIZE) {
+                        batches.put(batch);
+                        batch = new ArrayList<String[]>(STREAM_BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                readError.set(e);
+            } finally {
+                if (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        batches.put(Collections.<String[]>emptyList());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "corpus-reader");
+        reader.setDaemon(true);
+        reader.start();
+        CorpusIndexer indexer = new CorpusIndexer();
+        try {
+            List<String[]> batch;
+            while (!(batch = batches.take()).isEmpty()) {
+                for (String[] sentence : batch) {
+                    indexer.addSentence(sentence);
+                }
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Training was interrupted.");
+        } finally {
+            reader.interrupt();
+        }
+        Throwable error = readError.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IOException(error);
+        }
+        indexer.finish();
+    }
+
+    /**
+     * The CorpusIndexer class counts the words and tags of tagged
+     * sentences one at a time. Tags are numbered as they are seen,
+     * and the tag of the previous word is remembered by its number,
+     * so every word-tag string is only split once. The frequency
+     * tables of the model are only replaced when indexing is
+     * finished, so a failed indexing leaves the model unchanged.
+     */
+    private class CorpusIndexer {
+        private HashMap<String, Integer> wordCounts, wordTagCounts, tagIds;
+        private List<String> tagNames;
+        private int startTagId;
+        private int[] tagCounts;
+        private int[][] prevCurrTagCounts;
+
+        public CorpusIndexer() {
+            super();
+            wordCounts = new HashMap<String, Integer>();
+            wordTagCounts = new HashMap<String, Integer>();
+            tagIds = new HashMap<String, Integer>();
+            tagNames = new ArrayList<String>();
+            tagCounts = new int[64];
+            prevCurrTagCounts = new int[64][64];
+            startTagId = getTagId(startTag);
+        }
+
+        public void addSentence(String[] sentence) {
+            int prevTagId = startTagId;
+            if (sentence.length > 0) {
+                tagCounts[prevTagId] += 1;
+            }
+            for (String curr : sentence) {
+                int index = curr.lastIndexOf(separator);
+                int currTagId = getTagId(curr.substring(index + separator.length()));
+                incrementFreqTable(wordCounts, curr.substring(0, index));
+                incrementFreqTable(wordTagCounts, curr);
+                tagCounts[currTagId] += 1;
+                prevCurrTagCounts[prevTagId][currTagId] += 1;
+                prevTagId = currTagId;
+            }
+        }
+
+        public void finish() {
+            wordFreq = wordCounts;
+            wordTagFreq = wordTagCounts;
+            tagFreq = new HashMap<String, Integer>();
+            prevCurrTagFreq = new HashMap<String, Integer>();
+            for (int currTagId = 0; currTagId < tagNames.size(); currTagId++) {
+                if (tagCounts[currTagId] > 0) {
+                    tagFreq.put(tagNames.get(currTagId), tagCounts[currTagId]);
+                }
+                for (int prevTagId = 0; prevTagId < tagNames.size(); prevTagId++) {
+                    if (prevCurrTagCounts[prevTagId][currTagId] > 0) {
+                        prevCurrTagFreq.put(tagNames.get(prevTagId) + separator + tagNames.get(currTagId),
+                                prevCurrTagCounts[prevTagId][currTagId]);
+                    }
+                }
+            }
+            uniqueWords = new ArrayList<String>(wordFreq.keySet());
+            Collections.sort(uniqueWords);
+            uniqueTags = new ArrayList<String>(tagFreq.keySet());
+            Collections.sort(uniqueTags);
+        }
+
+        private int getTagId(String tag) {
+            Integer tagId = tagIds.get(tag);
+            if (tagId != null) {
+                return tagId;
+            }
+            tagId = tagNames.size();
+            tagIds.put(tag, tagId);
+            tagNames.add(tag);
+            if (tagId == tagCounts.length) {
+                int capacity = tagCounts.length * 2;
+                tagCounts = Arrays.copyOf(tagCounts, capacity);
+                prevCurrTagCounts = Arrays.copyOf(prevCurrTagCounts, capacity);
+                for (int prevTagId = 0; prevTagId < capacity; prevTagId++) {
+                    prevCurrTagCounts[prevTagId] = (prevTagId < tagId)
+                            ? Arrays.copyOf(prevCurrTagCounts[prevTagId], capacity)
+                            : new int[capacity];
                 }
-                prevCurrTag = prevTag + separator + currTag;
-                incrementFreqTable(prevCurrTagFreq, prevCurrTag);
             }
+            return tagId;
         }
-        uniqueWords = new ArrayList<String>(wordFreq.keySet());
-        Collections.sort(uniqueWords);
-        uniqueTags = new ArrayList<String>(tagFreq.keySet());
-        Collections.sort(uniqueTags);
     }
 
     /**
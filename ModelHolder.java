@@ -0,0 +1,111 @@
+/**
+ * ModelHolder keeps the model in use by a long-lived tagger
+ * process, and allows a retrained model file to be loaded,
+ * validated and swapped in atomically without restarting.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ModelHolder {
+    private AtomicReference<Model> current;
+    private ExecutorService reloadExecutor;
+
+    public ModelHolder(Model model) {
+        super();
+        if (model == null) {
+            throw new IllegalArgumentException("Model to hold must not be null.");
+        }
+        this.current = new AtomicReference<Model>(model);
+        this.reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This method tags an untagged corpus with the model held
+     * at the time of the call. A swap during tagging does not
+     * affect the call, which finishes on the model it started with.
+     *
+     * @param corpus
+     *
+     * @return List
+     */
+    public List<List<String>> tag(List<String[]> corpus) {
+        return current.get().tag(corpus);
+    }
+
+    /**
+     * This method tags a single untagged sentence with the
+     * model held at the time of the call.
+     *
+     * @param sentence
+     *
+     * @return List
+     */
+    public List<String> tag(String[] sentence) {
+        return current.get().tag(sentence);
+    }
+
+    /**
+     * This method loads a model from the given file, validates it
+     * on a tagged sample and swaps it in if its accuracy is at least
+     * the minimum accuracy. Without a sample, any model that loads
+     * is accepted. Reloads are serialised, so at most one model is
+     * being loaded alongside the model in use. It returns whether
+     * the model has been swapped in.
+     *
+     * @param modelPath
+     * @param taggedSample
+     * @param minAccuracy
+     *
+     * @return boolean
+     */
+    public synchronized boolean reload(String modelPath, List<String[]> taggedSample, float minAccuracy) {
+        Model candidate = new FileHandler(modelPath).readFileAsModel();
+        if (candidate == null) {
+            System.err.println("Model to be reloaded could not be read.");
+            return false;
+        }
+        if (taggedSample != null && !taggedSample.isEmpty()) {
+            float accuracy = candidate.test(taggedSample, candidate.getBestTechnique(), true);
+            if (accuracy < minAccuracy) {
+                System.err.println("Model to be reloaded failed validation with accuracy " + (accuracy * 100) + "%.");
+                return false;
+            }
+        }
+        TagCache previousCache = current.get().getCache();
+        if (previousCache != null) {
+            candidate.setCache(new TagCache(previousCache.getCapacity(), previousCache.getEvictionPolicy()));
+        }
+        current.set(candidate);
+        return true;
+    }
+
+    /**
+     * This method performs the reload on a background thread, so
+     * that tagging continues on the current model until the new
+     * model has been loaded, validated and swapped in.
+     *
+     * @param modelPath
+     * @param taggedSample
+     * @param minAccuracy
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Boolean> reloadAsync(String modelPath, List<String[]> taggedSample, float minAccuracy) {
+        return CompletableFuture.supplyAsync(() -> reload(modelPath, taggedSample, minAccuracy), reloadExecutor);
+    }
+
+    /*** Accessors ***/
+
+    public Model getModel() {
+        return this.current.get();
+    }
+}
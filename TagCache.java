@@ -0,0 +1,143 @@
+/**
+ * TagCache is a bounded, thread-safe cache of tag sequences
+ * for sentences that have already been decoded, so that
+ * repeated sentences can skip the Viterbi trellis entirely.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TagCache {
+    private LinkedHashMap<SentenceKey, String[]> entries;
+    private AtomicLong hits, misses;
+    private Eviction evictionPolicy;
+    private int capacity;
+
+    public TagCache(int capacity) {
+        this(capacity, Eviction.LRU);
+    }
+
+    public TagCache(int capacity, Eviction evictionPolicy) {
+        super();
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+        }
+        this.capacity = capacity;
+        this.evictionPolicy = evictionPolicy;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.entries = new LinkedHashMap<SentenceKey, String[]>(16, 0.75f, evictionPolicy == Eviction.LRU) {
+            protected boolean removeEldestEntry(Map.Entry<SentenceKey, String[]> eldest) {
+                return size() > TagCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * This method looks up the tag sequence cached for the
+     * sentence under the given smoothing technique, and records
+     * the lookup as a hit or a miss. It returns null on a miss.
+     *
+     * @param sentence
+     * @param technique
+     *
+     * @return String[]
+     */
+    public String[] get(String[] sentence, Technique technique) {
+        String[] tags;
+        synchronized (entries) {
+            tags = entries.get(new SentenceKey(sentence, technique));
+        }
+        if (tags != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return tags;
+    }
+
+    /**
+     * This method caches the tag sequence decoded for the sentence
+     * under the given smoothing technique, evicting an entry
+     * according to the eviction policy when the cache is full.
+     *
+     * @param sentence
+     * @param technique
+     * @param tags
+     */
+    public void put(String[] sentence, Technique technique, String[] tags) {
+        synchronized (entries) {
+            entries.put(new SentenceKey(sentence.clone(), technique), tags.clone());
+        }
+    }
+
+    /**
+     * This method removes all cached entries, leaving the hit
+     * and miss counters untouched.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /*** Accessors ***/
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return this.entries.size();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public Eviction getEvictionPolicy() {
+        return this.evictionPolicy;
+    }
+
+    /**
+     * The SentenceKey class identifies a cached sentence by its
+     * token sequence and smoothing technique. The hash of the tokens
+     * is computed once, and equal hashes are confirmed by comparing
+     * the tokens so that collisions never return a wrong sequence.
+     */
+    private static class SentenceKey {
+        private String[] tokens;
+        private Technique technique;
+        private int hash;
+
+        public SentenceKey(String[] tokens, Technique technique) {
+            super();
+            this.tokens = tokens;
+            this.technique = technique;
+            this.hash = 31 * Arrays.hashCode(tokens) + technique.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof SentenceKey)) {
+                return false;
+            }
+            SentenceKey key = (SentenceKey) other;
+            return hash == key.hash && technique == key.technique && Arrays.equals(tokens, key.tokens);
+        }
+    }
+}
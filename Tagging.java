@@ -0,0 +1,51 @@
+/**
+ * Tagging holds a tagged sentence produced by the model,
+ * together with the log probability of its tag sequence and
+ * the confidence of the model in each tag.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+import java.util.*;
+
+public class Tagging {
+    private List<String> taggedWords;
+    private double[] confidence;
+    private double logProbability;
+
+    public Tagging(List<String> taggedWords, double[] confidence, double logProbability) {
+        super();
+        this.taggedWords = taggedWords;
+        this.confidence = confidence;
+        this.logProbability = logProbability;
+    }
+
+    /**
+     * This method returns the lowest tag confidence in the
+     * sentence, which can be used to flag sentences for review.
+     *
+     * @return double
+     */
+    public double getMinConfidence() {
+        double minConfidence = 1.0;
+        for (double value : confidence) {
+            minConfidence = Math.min(minConfidence, value);
+        }
+        return minConfidence;
+    }
+
+    /*** Accessors ***/
+
+    public List<String> getTaggedWords() {
+        return this.taggedWords;
+    }
+
+    public double[] getConfidence() {
+        return this.confidence;
+    }
+
+    public double getLogProbability() {
+        return this.logProbability;
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * Technique labels the smoothing techniques that the
+ * model can apply on unknown words.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ * @version 1.0
+ * @since 2017-10-08
+ */
+public enum Technique {LAPLACE, WITTENBELL, KNESERNEY}
@@ -7,6 +7,7 @@
  * @version 1.0
  * @since 2017-10-08
  */
+import java.io.*;
 import java.util.*;
 
 public class build_tagger {
@@ -15,20 +16,20 @@ public class build_tagger {
      * select the optimal smoothing scheme for the trained model using
      * development sentences, perform a 10-fold validation on training
      * sentences to acquire averaged accuracy and write model results
-     * to file for testing and actual tagging.
+     * to file for testing and actual tagging. Training sentences are
+     * streamed from file instead of being read into memory.
      *
      * @param trainFile File path to training sentences
      * @param devFile File path to development sentences
      * @param modelFile File path to write model data (params. and prob.)
      */
     public static void main(String[] args) {
-        FileHandler trainFile, devFile, modelFile = null;
-        List<String[]> trainCorpus = null;
+        FileHandler trainFile = null, devFile, modelFile = null;
+        InputStream trainStream = null;
         List<String[]> devCorpus = null;
         if (args.length >= 3) {
             trainFile = new FileHandler(args[0]);
-            trainFile.readFile();
-            trainCorpus = trainFile.getFileAsCorpus();
+            trainStream = trainFile.getFileAsStream();
             devFile = new FileHandler((args[1]));
             devFile.readFile();
             devCorpus = devFile.getFileAsCorpus();
@@ -37,12 +38,22 @@ public class build_tagger {
             System.err.println("Incorrect number of parameters.");
             System.exit(-1);
         }
+        if (trainStream == null) {
+            System.exit(-1);
+        }
         Model posModel = new Model();
-        posModel.train(trainCorpus);
+        try {
+            posModel.train(trainStream);
+            trainStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
         posModel.tune(devCorpus);
         // Cross-validation is disabled in submission to save time as the values have already been recorded
         /*
-            float validatedAccuracy = posModel.crossValidate(trainCorpus, 10);
+            trainFile.readFile();
+            float validatedAccuracy = posModel.crossValidate(trainFile.getFileAsCorpus(), 10);
             System.out.println("Cross-validation accuracy of trained model: " + (validatedAccuracy * 100) + "%");
         */
         if (modelFile != null) {